@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The EndgameTablebase class answers late-game Connect Four positions from a precomputed table
+ * instead of searching them again. Tables are produced by {@link TablebaseBuilder} and store,
+ * for the positions with at most K empty cells that follow a root position, whether the player to
+ * move wins, draws or loses with perfect play and how many moves remain until the game ends.
+ *
+ * The root position is usually a saved game close to its end. Covering every Connect Four position
+ * with K empty cells instead would take far too much space. Positions from any other game are not
+ * in the table, and {@link #probe} returns null for them.
+ *
+ * The table file is memory-mapped, so its contents live off the Java heap. It holds no positions,
+ * only one 4-bit result per position (see {@link #encodeResult}), stored at the rank that
+ * {@link TablebaseIndex} gives the position. A lookup is therefore a constant-time computation.
+ *
+ * Positions are handled internally as bitboards: each column uses 7 bits (6 playable rows plus a
+ * spare bit), with bit 0 of each column being the bottom row.
+ */
+public class EndgameTablebase {
+    static final int MAGIC = 0x43345442;   // "C4TB", identifies a tablebase file
+    static final int VERSION = 2;          // Bumped whenever the file layout changes
+    static final int HEADER_BYTES = 28;    // Magic, version, max empty cells and the root position
+    static final int MAX_EMPTY_CELLS = 13; // Largest K whose distances still fit into 4 bits
+    static final int NO_RESULT = 15;       // Code of a ranked position that is already won
+    static final long MAX_FILE_BYTES = Integer.MAX_VALUE - 8; // Largest file that can be built and mapped
+
+    static final int COLUMN_HEIGHT = Grid.ROWS + 1; // Bits used per column in a bitboard
+    static final int CELLS = Grid.ROWS * Grid.COLUMNS;
+    static final long BOTTOM_MASK = bottomMask();   // One bit at the bottom of every column
+
+    /**
+     * The outcome of a position for the player to move, assuming perfect play from both sides.
+     */
+    public enum Outcome { WIN, DRAW, LOSS }
+
+    /**
+     * A tablebase entry: the outcome for the player to move and the number of moves
+     * (counting both players) until the game ends.
+     */
+    public static final class Result {
+        private final Outcome outcome;
+        private final int distance;
+
+        Result(Outcome outcome, int distance) {
+            this.outcome = outcome;
+            this.distance = distance;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return outcome + " in " + distance + (distance == 1 ? " move" : " moves");
+        }
+    }
+
+    private final MappedByteBuffer table; // Off-heap view of the tablebase file
+    private final TablebaseIndex index;   // Maps positions to their entry in the table
+    private final int maxEmptyCells;      // The K the table was built with
+
+    private EndgameTablebase(MappedByteBuffer table, TablebaseIndex index, int maxEmptyCells) {
+        this.table = table;
+        this.index = index;
+        this.maxEmptyCells = maxEmptyCells;
+    }
+
+    /**
+     * Maps a tablebase file produced by {@link TablebaseBuilder} into memory.
+     *
+     * @param fileName The name of the tablebase file.
+     * @return         The loaded tablebase, or null if the file could not be read or is not a tablebase.
+     */
+    public static EndgameTablebase load(String fileName) {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            // A single mapping is limited to Integer.MAX_VALUE bytes, larger files cannot be ours anyway
+            if (channel.size() < HEADER_BYTES || channel.size() > MAX_FILE_BYTES) {
+                System.err.println("Failed to load tablebase: " + fileName + " is not a tablebase file");
+                return null;
+            }
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION) {
+                System.err.println("Failed to load tablebase: " + fileName + " is not a tablebase file");
+                return null;
+            }
+            int maxEmptyCells = table.getInt(8);
+            long rootCurrent = table.getLong(12);
+            long rootMask = table.getLong(20);
+            if (maxEmptyCells < 1 || maxEmptyCells > MAX_EMPTY_CELLS || !isValidPosition(rootCurrent, rootMask)) {
+                System.err.println("Failed to load tablebase: " + fileName + " has a corrupt header");
+                return null;
+            }
+            TablebaseIndex index = new TablebaseIndex(rootCurrent, rootMask, maxEmptyCells);
+            if (table.capacity() != fileSize(index.size())) {
+                System.err.println("Failed to load tablebase: " + fileName + " is truncated");
+                return null;
+            }
+            return new EndgameTablebase(table, index, maxEmptyCells);
+        } catch (IOException e) {
+            System.err.println("Failed to load tablebase: " + e.getMessage());
+            return null;
+        } catch (ArithmeticException e) {
+            System.err.println("Failed to load tablebase: " + fileName + " has a corrupt header");
+            return null;
+        }
+    }
+
+    /**
+     * Returns the maximum number of empty cells a position may have to be stored in this table.
+     *
+     * @return The K this table was built with.
+     */
+    public int getMaxEmptyCells() {
+        return maxEmptyCells;
+    }
+
+    /**
+     * Returns the number of entries in this table.
+     *
+     * @return The number of entries.
+     */
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the size of a tablebase file with the given number of entries.
+     *
+     * @param entryCount The number of entries.
+     * @return           The file size in bytes: the header plus two entries per byte.
+     */
+    static long fileSize(long entryCount) {
+        return HEADER_BYTES + (entryCount + 1) / 2;
+    }
+
+    /**
+     * Looks up the result of a position for the player about to move.
+     *
+     * @param grid   The current game grid.
+     * @param symbol The symbol of the player whose turn it is.
+     * @return       The stored result, or null if the position is not in the table.
+     */
+    public Result probe(Grid grid, char symbol) {
+        return probe(currentBits(grid, symbol), maskBits(grid));
+    }
+
+    /**
+     * Picks the best move for the player to move using the table: the fastest win if there is one,
+     * otherwise a drawing move, otherwise the move that delays the loss the longest.
+     *
+     * @param grid   The current game grid.
+     * @param symbol The symbol of the player whose turn it is.
+     * @return       The best column (0-indexed), or -1 if the position cannot be answered by the table.
+     */
+    public int bestMove(Grid grid, char symbol) {
+        long current = currentBits(grid, symbol);
+        long mask = maskBits(grid);
+        if (probe(current, mask) == null) {
+            return -1; // Not in the table, so neither are the positions that follow it
+        }
+        int bestCol = -1;
+        int bestScore = Integer.MIN_VALUE;
+
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            if (!canPlay(mask, col)) {
+                continue;
+            }
+            long newMask = play(mask, col);
+            int score;
+            if (hasFourInARow(current | (newMask ^ mask))) {
+                return col; // Winning immediately cannot be improved on
+            } else if (Long.bitCount(newMask) == CELLS) {
+                score = score(Outcome.DRAW, 1);
+            } else {
+                Result reply = probe(current ^ mask, newMask);
+                score = score(opposite(reply.getOutcome()), reply.getDistance() + 1);
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestCol = col;
+            }
+        }
+        return bestCol;
+    }
+
+    /**
+     * Reads the stored result of a position.
+     *
+     * @param current The discs of the player to move.
+     * @param mask    The occupied cells.
+     * @return        The stored result, or null if the position is not in the table or is already won.
+     */
+    private Result probe(long current, long mask) {
+        long rank = index.rank(current, mask);
+        if (rank < 0) {
+            return null;
+        }
+        int packed = table.get((int) (HEADER_BYTES + (rank >>> 1)));
+        int code = (rank & 1) == 0 ? packed & 0x0F : (packed >>> 4) & 0x0F;
+        return code == NO_RESULT ? null : decodeResult(code, CELLS - Long.bitCount(mask));
+    }
+
+    /**
+     * Packs a result into 4 bits. Draws always end when the grid is full, so their distance is not
+     * stored. A win always lands on the winner's own move (an odd distance) and a loss on the
+     * opponent's move (an even distance), which lets both fit into the remaining codes:
+     * 0 is a draw, 1-7 a win in 1, 3, ..., 13 moves and 8-13 a loss in 2, 4, ..., 12 moves.
+     *
+     * @param outcome  The outcome for the player to move.
+     * @param distance The number of moves until the game ends.
+     * @return         The 4-bit code.
+     */
+    static int encodeResult(Outcome outcome, int distance) {
+        switch (outcome) {
+            case WIN:
+                return (distance + 1) / 2;
+            case LOSS:
+                return 7 + distance / 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Unpacks a 4-bit code produced by {@link #encodeResult}.
+     *
+     * @param code       The 4-bit code.
+     * @param emptyCells The number of empty cells in the position, which is the distance of a draw.
+     * @return           The decoded result.
+     */
+    static Result decodeResult(int code, int emptyCells) {
+        if (code == 0) {
+            return new Result(Outcome.DRAW, emptyCells);
+        } else if (code <= 7) {
+            return new Result(Outcome.WIN, code * 2 - 1);
+        } else {
+            return new Result(Outcome.LOSS, (code - 7) * 2);
+        }
+    }
+
+    /**
+     * Ranks a result from the point of view of the player to move: faster wins first,
+     * then draws, then slower losses.
+     */
+    static int score(Outcome outcome, int distance) {
+        switch (outcome) {
+            case WIN:
+                return CELLS + 1 - distance;
+            case LOSS:
+                return distance - CELLS - 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the outcome seen by the other player.
+     */
+    static Outcome opposite(Outcome outcome) {
+        switch (outcome) {
+            case WIN:
+                return Outcome.LOSS;
+            case LOSS:
+                return Outcome.WIN;
+            default:
+                return Outcome.DRAW;
+        }
+    }
+
+    /**
+     * Builds the bitboard of the discs owned by the given player.
+     */
+    static long currentBits(Grid grid, char symbol) {
+        long bits = 0;
+        for (int row = 0; row < Grid.ROWS; row++) {
+            for (int col = 0; col < Grid.COLUMNS; col++) {
+                if (grid.getSymbolAt(row, col) == symbol) {
+                    bits |= cellBit(row, col);
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Builds the bitboard of all occupied cells.
+     */
+    static long maskBits(Grid grid) {
+        long bits = 0;
+        for (int row = 0; row < Grid.ROWS; row++) {
+            for (int col = 0; col < Grid.COLUMNS; col++) {
+                if (grid.getSymbolAt(row, col) != ' ') {
+                    bits |= cellBit(row, col);
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the bitboard bit of a grid cell. Grid row 0 is the top, bitboard row 0 is the bottom.
+     */
+    private static long cellBit(int row, int col) {
+        return 1L << (col * COLUMN_HEIGHT + (Grid.ROWS - 1 - row));
+    }
+
+    /**
+     * Checks that a pair of bitboards describes a grid: discs only in playable cells, stacked from
+     * the bottom of each column, and the player-to-move discs among the occupied cells.
+     */
+    static boolean isValidPosition(long current, long mask) {
+        if ((current & ~mask) != 0 || (mask & ~(BOTTOM_MASK * ((1L << Grid.ROWS) - 1))) != 0) {
+            return false;
+        }
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            long column = (mask >>> (col * COLUMN_HEIGHT)) & ((1L << Grid.ROWS) - 1);
+            if ((column & (column + 1)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a column still has room for a disc.
+     */
+    static boolean canPlay(long mask, int col) {
+        return (mask & (1L << (col * COLUMN_HEIGHT + Grid.ROWS - 1))) == 0;
+    }
+
+    /**
+     * Drops a disc into a column and returns the new occupied-cells bitboard.
+     */
+    static long play(long mask, int col) {
+        return mask | (mask + (1L << (col * COLUMN_HEIGHT)));
+    }
+
+    /**
+     * Checks whether a player's discs contain four in a row in any direction.
+     */
+    static boolean hasFourInARow(long discs) {
+        // Vertical, horizontal and the two diagonals
+        int[] shifts = {1, COLUMN_HEIGHT, COLUMN_HEIGHT - 1, COLUMN_HEIGHT + 1};
+        for (int shift : shifts) {
+            long pairs = discs & (discs >>> shift);
+            if ((pairs & (pairs >>> (2 * shift))) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long bottomMask() {
+        long mask = 0;
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            mask |= 1L << (col * COLUMN_HEIGHT);
+        }
+        return mask;
+    }
+}
@@ -12,8 +12,8 @@ import java.util.Stack;
  */
 public class Grid implements Serializable {
     private static final long serialVersionUID = 1L; // Ensures version consistency during serialization
-    private static final int ROWS = 6;  // Number of rows in the grid
-    private static final int COLUMNS = 7; // Number of columns in the grid
+    public static final int ROWS = 6;  // Number of rows in the grid
+    public static final int COLUMNS = 7; // Number of columns in the grid
     private final char[][] grid; // 2D array representing the game board
     private final Stack<Disc> moveHistory; // Stack to keep track of moves for undo functionality
 
@@ -103,6 +103,34 @@ public class Grid implements Serializable {
         return true; // All columns are full
     }
 
+    /**
+     * Counts the empty cells remaining in the grid, i.e. the number of moves left before a draw.
+     *
+     * @return The number of empty cells in the grid.
+     */
+    public int countEmptyCells() {
+        int empty = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                if (grid[row][col] == ' ') {
+                    empty++;
+                }
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * Returns the symbol stored in the specified cell.
+     *
+     * @param row The row index (0-indexed, row 0 is the top of the grid).
+     * @param col The column index (0-indexed).
+     * @return    The symbol in the cell, or a space (' ') if the cell is empty.
+     */
+    public char getSymbolAt(int row, int col) {
+        return grid[row][col];
+    }
+
     /**
      * Checks if the most recent move in the specified column resulted in a win by forming four consecutive symbols.
      *
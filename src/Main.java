@@ -1,3 +1,4 @@
+import java.io.File;
 import java.util.Scanner;
 
 public class Main {
@@ -42,14 +43,17 @@ public class Main {
             Player player1 = gameData.player1;
             Player player2 = gameData.player2;
 
+            // Load the endgame tablebase used for hints, if one has been built with TablebaseBuilder
+            EndgameTablebase tablebase = new File("endgame.tb").exists() ? EndgameTablebase.load("endgame.tb") : null;
+
             // Display the initial empty game grid
             System.out.println(grid);
             boolean gameInProgress = true;
 
             // Main game loop: alternates between players until the game ends (win, draw, or exit)
             while (gameInProgress) {
-                // Execute the current player's turn, passing the game grid and player details
-                gameInProgress = currentPlayer.takeTurn(grid, player1, player2, sc);
+                // Execute the current player's turn, passing the game grid, player details and tablebase
+                gameInProgress = currentPlayer.takeTurn(grid, player1, player2, sc, tablebase);
 
                 // Alternate players for the next turn by switching currentPlayer
                 currentPlayer = (currentPlayer == player1) ? player2 : player1;
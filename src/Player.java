@@ -50,24 +50,26 @@ public class Player implements Serializable {
 
     /**
      * Manages a player’s turn. This method prompts the player to enter a column
-     * to place their disc in or to enter a special command (-1 to undo, -2 to save, -3 to exit).
+     * to place their disc in or to enter a special command (-1 to undo, -2 to save, -3 to exit, -4 for a hint).
      * Depending on the input, it handles the respective action:
      * - Places a disc in the specified column
      * - Undoes the last move if requested
      * - Saves the game state if requested
      * - Exits the game if requested
+     * - Shows the best move from the endgame tablebase if requested
      *
      * @param grid    The game grid, which represents the Connect Four board.
      * @param player1 The first player in the game, used for saving the game state.
      * @param player2 The second player in the game, used for saving the game state.
      * @param sc      Scanner object used to capture the player’s input.
+     * @param tablebase The endgame tablebase used for hints, or null if none is loaded.
      * @return        True if the game should continue, or false if it should end (due to win, draw, or exit).
      */
-    public boolean takeTurn(Grid grid, Player player1, Player player2, Scanner sc) {
+    public boolean takeTurn(Grid grid, Player player1, Player player2, Scanner sc, EndgameTablebase tablebase) {
         while (true) {
             try {
                 // Prompt the player to make a move or enter a special command
-                System.out.println("Player " + name + " (" + symbol + "), enter column (1-7) or -1 to undo, -2 to save, -3 to exit:");
+                System.out.println("Player " + name + " (" + symbol + "), enter column (1-7) or -1 to undo, -2 to save, -3 to exit, -4 for a hint:");
                 int col = sc.nextInt();
 
                 // Exit the game if -3 is entered
@@ -81,6 +83,11 @@ public class Player implements Serializable {
                     System.out.println("Game saved. You may continue your turn.");
                     continue;  // Remain in the loop for the current player's turn
                 }
+                // Show a hint from the endgame tablebase if -4 is entered
+                else if (col == -4) {
+                    showHint(grid, tablebase);
+                    continue;  // Remain in the loop for the current player's turn
+                }
                 // Undo the last move if -1 is entered
                 else if (col == -1) {
                     if (grid.undoMove()) {
@@ -123,8 +130,30 @@ public class Player implements Serializable {
             }
         }
     }
-}
-
-
 
+    /**
+     * Prints the best move for this player according to the endgame tablebase, along with
+     * the expected outcome, or explains why no hint is available.
+     *
+     * @param grid      The game grid, which represents the Connect Four board.
+     * @param tablebase The endgame tablebase, or null if none is loaded.
+     */
+    private void showHint(Grid grid, EndgameTablebase tablebase) {
+        if (tablebase == null) {
+            System.out.println("No endgame tablebase loaded. Build endgame.tb with TablebaseBuilder to get hints.");
+            return;
+        }
+        if (grid.countEmptyCells() > tablebase.getMaxEmptyCells()) {
+            System.out.println("Hints are available once " + tablebase.getMaxEmptyCells() + " or fewer cells are empty.");
+            return;
+        }
 
+        EndgameTablebase.Result result = tablebase.probe(grid, symbol);
+        if (result == null) {
+            System.out.println("This position is not covered by the endgame tablebase.");
+        } else {
+            int col = tablebase.bestMove(grid, symbol);
+            System.out.println("Hint: play column " + (col + 1) + " (" + result + " with perfect play).");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import com.sun.management.OperatingSystemMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The TablebaseBuilder class is a command-line tool that builds an {@link EndgameTablebase}
+ * by retrograde analysis. Starting from a saved game, it solves every position with at most K empty
+ * cells that can follow it, working backwards from the fullest grids towards the emptiest ones,
+ * so each position is solved from its already-solved successors.
+ *
+ * Usage: {@code java TablebaseBuilder [savedGameFile] [maxEmptyCells] [tablebaseFile]}
+ *
+ * The table only covers positions that follow the saved game; see {@link EndgameTablebase}.
+ * Its size depends mostly on how many cells are empty in the saved game, and then on K, at 4 bits
+ * per entry. The table is solved directly inside the memory-mapped output file, off the Java heap.
+ * A build is rejected up front if the table does not fit into memory (or a mappable file), and the
+ * rejection names the largest K that would fit.
+ */
+public class TablebaseBuilder {
+    private static final int DEFAULT_MAX_EMPTY_CELLS = 12; // Default K when none is given
+    private static final String USAGE = "Usage: java TablebaseBuilder [savedGameFile] [maxEmptyCells] [tablebaseFile]";
+
+    public static void main(String[] args) {
+        String savedGameFile = args.length > 0 ? args[0] : "saved_game.dat";
+        int maxEmptyCells = DEFAULT_MAX_EMPTY_CELLS;
+        if (args.length > 1) {
+            try {
+                maxEmptyCells = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Max empty cells must be a number, got " + args[1]);
+                System.err.println(USAGE);
+                return;
+            }
+        }
+        String tablebaseFile = args.length > 2 ? args[2] : "endgame.tb";
+
+        GameState gameState = GameSaver.loadGame(savedGameFile);
+        if (gameState == null) {
+            return;
+        }
+        try {
+            buildTablebase(gameState.getGrid(), gameState.getCurrentPlayer().getSymbol(), maxEmptyCells, tablebaseFile);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to build tablebase: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a tablebase covering every position with at most {@code maxEmptyCells} empty cells
+     * that can follow the given position, and writes it to a file.
+     *
+     * @param grid          The starting grid.
+     * @param symbol        The symbol of the player to move in the starting grid.
+     * @param maxEmptyCells The K of the tablebase (1 to {@value EndgameTablebase#MAX_EMPTY_CELLS}).
+     * @param fileName      The name of the file the tablebase will be written to.
+     * @throws IllegalArgumentException if K is out of range, the game is already won,
+     *                                  or the table would be too large.
+     */
+    public static void buildTablebase(Grid grid, char symbol, int maxEmptyCells, String fileName) {
+        if (maxEmptyCells < 1 || maxEmptyCells > EndgameTablebase.MAX_EMPTY_CELLS) {
+            throw new IllegalArgumentException("Max empty cells must be between 1 and "
+                    + EndgameTablebase.MAX_EMPTY_CELLS + ", got " + maxEmptyCells);
+        }
+        long current = EndgameTablebase.currentBits(grid, symbol);
+        long mask = EndgameTablebase.maskBits(grid);
+        if (EndgameTablebase.hasFourInARow(current ^ mask) || EndgameTablebase.hasFourInARow(current)) {
+            throw new IllegalArgumentException("The game in this grid is already won.");
+        }
+
+        long available = availableBytes();
+        long needed = tableBytes(current, mask, maxEmptyCells);
+        if (needed > available) {
+            int fittingMaxEmptyCells = maxEmptyCells - 1;
+            while (fittingMaxEmptyCells >= 1 && tableBytes(current, mask, fittingMaxEmptyCells) > available) {
+                fittingMaxEmptyCells--;
+            }
+            String needs = (needed == Long.MAX_VALUE) ? "far more than" : needed + " bytes, but only";
+            String advice = (fittingMaxEmptyCells >= 1)
+                    ? "The largest max empty cells that fits is " + fittingMaxEmptyCells + "."
+                    : "No max empty cells fits; save a game closer to its end.";
+            throw new IllegalArgumentException("A table for a grid with " + grid.countEmptyCells() + " empty cells "
+                    + "and max empty cells " + maxEmptyCells + " needs " + needs + " " + available
+                    + " bytes are available. " + advice);
+        }
+
+        TablebaseIndex index = new TablebaseIndex(current, mask, maxEmptyCells);
+        System.out.println("Solving " + index.size() + " positions (" + needed + " bytes)...");
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    EndgameTablebase.fileSize(index.size()));
+            table.putInt(0, EndgameTablebase.MAGIC);
+            table.putInt(4, EndgameTablebase.VERSION);
+            table.putInt(8, maxEmptyCells);
+            table.putLong(12, current);
+            table.putLong(20, mask);
+            solve(index, table);
+            table.force();
+            System.out.println("Tablebase saved to " + fileName);
+        } catch (IOException e) {
+            System.err.println("Failed to save tablebase: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of bytes the packed results of a table take.
+     *
+     * @param rootCurrent   The discs of the player to move at the root.
+     * @param rootMask      The occupied cells at the root.
+     * @param maxEmptyCells The K of the tablebase.
+     * @return              The size in bytes, or Long.MAX_VALUE if there are too many positions to count.
+     */
+    private static long tableBytes(long rootCurrent, long rootMask, int maxEmptyCells) {
+        try {
+            return (new TablebaseIndex(rootCurrent, rootMask, maxEmptyCells).size() + 1) / 2;
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns how many bytes of results can be solved. Solving reads the table at random, so it must
+     * stay in physical memory (half of it, leaving room for everything else) to avoid paging to disk,
+     * and it must also fit into a file that can be mapped.
+     *
+     * @return The largest table size in bytes that can be built.
+     */
+    private static long availableBytes() {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        return Math.min(os.getTotalMemorySize() / 2, EndgameTablebase.MAX_FILE_BYTES - EndgameTablebase.HEADER_BYTES);
+    }
+
+    /**
+     * Solves every position in the index. Positions with more added discs have higher ranks, so
+     * walking the ranks downwards solves the fullest grids first. Each position takes the best
+     * result among its moves: an immediate win, a full grid, or the already-solved result of the
+     * resulting position seen from the other side.
+     *
+     * @param index The index of the positions to solve.
+     * @param table The mapped tablebase file; the 4-bit result codes are packed two per byte
+     *              after the header, in rank order.
+     */
+    private static void solve(TablebaseIndex index, MappedByteBuffer table) {
+        long[] position = new long[2];
+        for (long rank = index.size() - 1; rank >= 0; rank--) {
+            index.unrank(rank, position);
+            long current = position[0];
+            long mask = position[1];
+            if (EndgameTablebase.hasFourInARow(current) || EndgameTablebase.hasFourInARow(current ^ mask)) {
+                setCode(table, rank, EndgameTablebase.NO_RESULT); // Cannot come up: the game is over
+                continue;
+            }
+
+            int empty = EndgameTablebase.CELLS - Long.bitCount(mask);
+            EndgameTablebase.Outcome bestOutcome = null;
+            int bestDistance = 0;
+            int bestScore = Integer.MIN_VALUE;
+
+            for (int col = 0; col < Grid.COLUMNS; col++) {
+                if (!EndgameTablebase.canPlay(mask, col)) {
+                    continue;
+                }
+                long newMask = EndgameTablebase.play(mask, col);
+                EndgameTablebase.Outcome outcome;
+                int distance;
+                if (EndgameTablebase.hasFourInARow(current | (newMask ^ mask))) {
+                    outcome = EndgameTablebase.Outcome.WIN;
+                    distance = 1;
+                } else if (empty == 1) {
+                    outcome = EndgameTablebase.Outcome.DRAW;
+                    distance = 1;
+                } else {
+                    long childRank = index.rank(current ^ mask, newMask);
+                    EndgameTablebase.Result reply = EndgameTablebase.decodeResult(getCode(table, childRank), empty - 1);
+                    outcome = EndgameTablebase.opposite(reply.getOutcome());
+                    distance = reply.getDistance() + 1;
+                }
+                int score = EndgameTablebase.score(outcome, distance);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestOutcome = outcome;
+                    bestDistance = distance;
+                }
+            }
+            setCode(table, rank, EndgameTablebase.encodeResult(bestOutcome, bestDistance));
+        }
+    }
+
+    private static int getCode(MappedByteBuffer table, long rank) {
+        int packed = table.get((int) (EndgameTablebase.HEADER_BYTES + (rank >>> 1)));
+        return (rank & 1) == 0 ? packed & 0x0F : (packed >>> 4) & 0x0F;
+    }
+
+    private static void setCode(MappedByteBuffer table, long rank, int code) {
+        int position = (int) (EndgameTablebase.HEADER_BYTES + (rank >>> 1));
+        int packed = table.get(position);
+        if ((rank & 1) == 0) {
+            table.put(position, (byte) ((packed & 0xF0) | code));
+        } else {
+            table.put(position, (byte) ((packed & 0x0F) | (code << 4)));
+        }
+    }
+}
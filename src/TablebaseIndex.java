@@ -0,0 +1,196 @@
+/**
+ * The TablebaseIndex class is the ranking function behind an {@link EndgameTablebase}. It numbers
+ * every position that can follow a fixed root position and has at most K empty cells, so that a
+ * table only needs to store the 4-bit result of each position at its rank, and no keys at all.
+ *
+ * A position that follows the root adds n discs on top of it. It is described by how many discs
+ * were added to each column and by which of the added discs belong to the player who was to move
+ * at the root (always (n + 1) / 2 of them). Positions are ranked by n first, then by the column
+ * heights, then by the choice of discs. Some ranked positions cannot come up in a real game (for
+ * example, a column whose colours could not have been stacked in that order), which costs a few
+ * unused slots but keeps both ranking and unranking simple arithmetic.
+ */
+class TablebaseIndex {
+    private static final long[][] BINOMIAL = binomials(EndgameTablebase.CELLS + 1);
+
+    private final long rootCurrent;  // Discs of the player to move at the root
+    private final long rootMask;     // Occupied cells at the root
+    private final int rootEmpty;     // Empty cells at the root
+    private final int minAdded;      // Fewest added discs a ranked position has (so at most K are empty)
+    private final int[] rootHeights; // Number of discs in each column at the root
+    private final long[][] heightCounts; // heightCounts[c][s]: ways columns c.. can hold s added discs
+    private final long[] layerStart; // layerStart[n]: rank of the first position with n added discs
+
+    /**
+     * Constructs the index for the positions that follow a root position.
+     *
+     * @param rootCurrent   The discs of the player to move at the root.
+     * @param rootMask      The occupied cells at the root.
+     * @param maxEmptyCells The K of the tablebase.
+     * @throws ArithmeticException if there are too many positions to count in a long.
+     */
+    TablebaseIndex(long rootCurrent, long rootMask, int maxEmptyCells) {
+        this.rootCurrent = rootCurrent;
+        this.rootMask = rootMask;
+        this.rootEmpty = EndgameTablebase.CELLS - Long.bitCount(rootMask);
+        this.minAdded = Math.max(0, rootEmpty - maxEmptyCells);
+
+        rootHeights = new int[Grid.COLUMNS];
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            rootHeights[col] = Long.bitCount(columnBits(rootMask, col));
+        }
+
+        heightCounts = new long[Grid.COLUMNS + 1][rootEmpty + 1];
+        heightCounts[Grid.COLUMNS][0] = 1;
+        for (int col = Grid.COLUMNS - 1; col >= 0; col--) {
+            int free = Grid.ROWS - rootHeights[col];
+            for (int sum = 0; sum <= rootEmpty; sum++) {
+                for (int added = 0; added <= Math.min(free, sum); added++) {
+                    heightCounts[col][sum] += heightCounts[col + 1][sum - added];
+                }
+            }
+        }
+
+        // Full grids are finished games, so the last layer holds positions with one empty cell
+        layerStart = new long[rootEmpty + 1];
+        long size = 0;
+        for (int added = minAdded; added < rootEmpty; added++) {
+            layerStart[added] = size;
+            size = Math.addExact(size, Math.multiplyExact(heightCounts[0][added], colourCount(added)));
+        }
+        layerStart[rootEmpty] = size;
+    }
+
+    /**
+     * Returns the number of ranked positions, i.e. the number of entries in the table.
+     *
+     * @return The size of the index.
+     */
+    long size() {
+        return layerStart[rootEmpty];
+    }
+
+    /**
+     * Returns the rank of a position, or -1 if it does not follow the root, is finished
+     * (full grid) or has more than K empty cells.
+     *
+     * @param current The discs of the player to move.
+     * @param mask    The occupied cells.
+     * @return        The rank of the position, or -1 if it is not in the index.
+     */
+    long rank(long current, long mask) {
+        if ((mask & rootMask) != rootMask || (current & ~mask) != 0) {
+            return -1;
+        }
+        long added = mask & ~rootMask;
+        int addedCount = Long.bitCount(added);
+        if (addedCount < minAdded || addedCount >= rootEmpty) {
+            return -1;
+        }
+
+        // After an even number of added discs it is the root player's turn again
+        long rootPlayer = (addedCount % 2 == 0) ? current : mask ^ current;
+        long rootPlayerAdded = rootPlayer & added;
+        if ((rootPlayer & rootMask) != rootCurrent || Long.bitCount(rootPlayerAdded) != (addedCount + 1) / 2) {
+            return -1;
+        }
+
+        long heightRank = 0;
+        int remaining = addedCount;
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            long column = columnBits(mask, col);
+            if ((column & (column + 1)) != 0) {
+                return -1; // Discs are not stacked from the bottom of the column
+            }
+            int addedHere = Long.bitCount(columnBits(added, col));
+            for (int smaller = 0; smaller < addedHere; smaller++) {
+                heightRank += heightCounts[col + 1][remaining - smaller];
+            }
+            remaining -= addedHere;
+        }
+
+        // Combinatorial number system over the added discs, ordered column by column from the bottom
+        long colourRank = 0;
+        int chosen = 1;
+        for (long bits = rootPlayerAdded; bits != 0; bits &= bits - 1) {
+            int position = Long.bitCount(added & (Long.lowestOneBit(bits) - 1));
+            colourRank += BINOMIAL[position][chosen++];
+        }
+        return layerStart[addedCount] + heightRank * colourCount(addedCount) + colourRank;
+    }
+
+    /**
+     * Finds the position at a rank; the inverse of {@link #rank}.
+     *
+     * @param rank     A rank between 0 (inclusive) and {@link #size()} (exclusive).
+     * @param position Receives the discs of the player to move at index 0 and the occupied cells at index 1.
+     */
+    void unrank(long rank, long[] position) {
+        int addedCount = minAdded;
+        while (layerStart[addedCount + 1] <= rank) {
+            addedCount++;
+        }
+        long offset = rank - layerStart[addedCount];
+        long heightRank = offset / colourCount(addedCount);
+        long colourRank = offset % colourCount(addedCount);
+
+        long[] addedCells = new long[addedCount];
+        int cellCount = 0;
+        int remaining = addedCount;
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            int addedHere = 0;
+            while (heightRank >= heightCounts[col + 1][remaining - addedHere]) {
+                heightRank -= heightCounts[col + 1][remaining - addedHere];
+                addedHere++;
+            }
+            for (int row = rootHeights[col]; row < rootHeights[col] + addedHere; row++) {
+                addedCells[cellCount++] = 1L << (col * EndgameTablebase.COLUMN_HEIGHT + row);
+            }
+            remaining -= addedHere;
+        }
+
+        long added = 0;
+        for (long cell : addedCells) {
+            added |= cell;
+        }
+        long rootPlayerAdded = 0;
+        int cellIndex = addedCount;
+        for (int chosen = (addedCount + 1) / 2; chosen > 0; chosen--) {
+            do {
+                cellIndex--;
+            } while (BINOMIAL[cellIndex][chosen] > colourRank);
+            colourRank -= BINOMIAL[cellIndex][chosen];
+            rootPlayerAdded |= addedCells[cellIndex];
+        }
+
+        long mask = rootMask | added;
+        long rootPlayer = rootCurrent | rootPlayerAdded;
+        position[0] = (addedCount % 2 == 0) ? rootPlayer : mask ^ rootPlayer;
+        position[1] = mask;
+    }
+
+    /**
+     * Returns the number of ways to pick the root player's discs among {@code added} added discs.
+     */
+    private static long colourCount(int added) {
+        return BINOMIAL[added][(added + 1) / 2];
+    }
+
+    /**
+     * Extracts the 6 playable bits of a column from a bitboard.
+     */
+    private static long columnBits(long bitboard, int col) {
+        return (bitboard >>> (col * EndgameTablebase.COLUMN_HEIGHT)) & ((1L << Grid.ROWS) - 1);
+    }
+
+    private static long[][] binomials(int size) {
+        long[][] binomial = new long[size][size];
+        for (int n = 0; n < size; n++) {
+            binomial[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                binomial[n][k] = binomial[n - 1][k - 1] + binomial[n - 1][k];
+            }
+        }
+        return binomial;
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the endgame tablebase: its 4-bit result codes, the ranking of positions, the solved
+ * results against a plain negamax search, and the rejection of broken files.
+ * Run with {@code java EndgameTablebaseTest}; any failure throws an AssertionError.
+ */
+public class EndgameTablebaseTest {
+    private static final int MAX_EMPTY_CELLS = 10; // K of the test table, small enough to search
+
+    public static void main(String[] args) throws ColumnFullException, IOException {
+        testResultCodesAtTheEdges();
+        testRankRoundTrip();
+
+        File tablebaseFile = File.createTempFile("endgame", ".tb");
+        tablebaseFile.deleteOnExit();
+        Grid root = rootGrid();
+        TablebaseBuilder.buildTablebase(root, 'X', MAX_EMPTY_CELLS, tablebaseFile.getPath());
+        EndgameTablebase tablebase = EndgameTablebase.load(tablebaseFile.getPath());
+        check(tablebase != null, "a freshly built tablebase must load");
+
+        testAgainstNegamax(tablebase, root);
+        testLoadRejectsBrokenFiles(Files.readAllBytes(tablebaseFile.toPath()));
+        System.out.println("All endgame tablebase tests passed.");
+    }
+
+    /**
+     * Builds a near-full grid with 14 empty cells, X to move and no four in a row yet.
+     */
+    private static Grid rootGrid() throws ColumnFullException {
+        Grid grid = new Grid();
+        int[] moves = {3, 3, 2, 4, 4, 2, 5, 1, 0, 6, 0, 6, 1, 1, 5, 5, 0, 0, 6, 6, 2, 2, 3, 3, 4, 4, 1, 1};
+        char symbol = 'X';
+        for (int col : moves) {
+            grid.makeMove(symbol, col);
+            check(!grid.isWinningMove(col, symbol), "the root grid must not be won");
+            symbol = (symbol == 'X') ? 'O' : 'X';
+        }
+        return grid;
+    }
+
+    /**
+     * The longest win and loss that fit into 4 bits, and draws, must survive encoding.
+     */
+    private static void testResultCodesAtTheEdges() {
+        int K = EndgameTablebase.MAX_EMPTY_CELLS;
+        checkResult(EndgameTablebase.Outcome.WIN, 1, K);
+        checkResult(EndgameTablebase.Outcome.WIN, 13, K);
+        checkResult(EndgameTablebase.Outcome.LOSS, 2, K);
+        checkResult(EndgameTablebase.Outcome.LOSS, 12, K);
+        checkResult(EndgameTablebase.Outcome.DRAW, 5, 5);
+
+        check(EndgameTablebase.encodeResult(EndgameTablebase.Outcome.WIN, 13) < EndgameTablebase.NO_RESULT,
+                "win in 13 must not collide with NO_RESULT");
+        check(EndgameTablebase.encodeResult(EndgameTablebase.Outcome.LOSS, 12) < EndgameTablebase.NO_RESULT,
+                "loss in 12 must not collide with NO_RESULT");
+        check(EndgameTablebase.encodeResult(EndgameTablebase.Outcome.WIN, 13)
+                        != EndgameTablebase.encodeResult(EndgameTablebase.Outcome.LOSS, 2),
+                "win and loss codes must not overlap");
+    }
+
+    private static void checkResult(EndgameTablebase.Outcome outcome, int distance, int emptyCells) {
+        int code = EndgameTablebase.encodeResult(outcome, distance);
+        check(code >= 0 && code <= 0x0F, outcome + " in " + distance + " must fit into 4 bits");
+        EndgameTablebase.Result result = EndgameTablebase.decodeResult(code, emptyCells);
+        check(result.getOutcome() == outcome && result.getDistance() == distance,
+                outcome + " in " + distance + " decoded as " + result);
+    }
+
+    /**
+     * Every rank of a small index must unrank to a position that ranks back to it.
+     */
+    private static void testRankRoundTrip() throws ColumnFullException {
+        Grid grid = new Grid();
+        int[] moves = {3, 3, 2, 4, 4, 2, 5, 1, 0, 6, 0, 6, 1, 1, 5, 5, 0, 0, 6, 6, 2, 2, 3, 3, 4, 4, 1, 1};
+        char symbol = 'X';
+        for (int col : moves) {
+            grid.makeMove(symbol, col);
+            symbol = (symbol == 'X') ? 'O' : 'X';
+        }
+
+        TablebaseIndex index = new TablebaseIndex(
+                EndgameTablebase.currentBits(grid, symbol), EndgameTablebase.maskBits(grid), 10);
+        check(index.size() > 0, "index must not be empty");
+        long[] position = new long[2];
+        for (long rank = 0; rank < index.size(); rank++) {
+            index.unrank(rank, position);
+            long current = position[0];
+            long mask = position[1];
+            check(EndgameTablebase.CELLS - Long.bitCount(mask) <= 10, "rank " + rank + " has too many empty cells");
+            check(index.rank(current, mask) == rank, "rank " + rank + " does not round trip");
+        }
+        check(index.rank(0, 0) == -1, "the empty grid does not follow the root");
+    }
+
+    /**
+     * Random games from the root must find the same results in the table as a negamax search,
+     * and the table's best move must reach the negamax score. Positions outside the table are
+     * not answered.
+     */
+    private static void testAgainstNegamax(EndgameTablebase tablebase, Grid grid) throws ColumnFullException {
+        Random random = new Random(42);
+        int checked = 0;
+        for (int game = 0; game < 300; game++) {
+            char symbol = 'X';
+            int moves = 0;
+            boolean finished = false;
+            // Play to at most K empty cells, then sometimes a few moves further
+            while (!finished && (grid.countEmptyCells() > MAX_EMPTY_CELLS || random.nextInt(3) == 0)) {
+                int col = random.nextInt(Grid.COLUMNS);
+                if (grid.checkColumnFull(col)) {
+                    continue;
+                }
+                grid.makeMove(symbol, col);
+                moves++;
+                finished = grid.isWinningMove(col, symbol) || grid.isGridFull();
+                symbol = (symbol == 'X') ? 'O' : 'X';
+            }
+
+            if (!finished) {
+                int expected = negamax(grid, symbol);
+                EndgameTablebase.Result result = tablebase.probe(grid, symbol);
+                check(result != null, "position missing from the table:\n" + grid);
+                check(score(result) == expected, "probe gave " + result + " but negamax scored " + expected + ":\n" + grid);
+
+                int col = tablebase.bestMove(grid, symbol);
+                check(col >= 0, "bestMove found no move for a covered position:\n" + grid);
+                check(scoreAfterMove(grid, symbol, col) == expected, "bestMove chose column " + (col + 1) + ":\n" + grid);
+                checked++;
+            }
+            for (int i = 0; i < moves; i++) {
+                grid.undoMove();
+            }
+        }
+        check(checked > 50, "too few positions were compared: " + checked);
+
+        Grid other = new Grid();
+        check(tablebase.probe(other, 'X') == null, "a position from another game must not be answered");
+        check(tablebase.bestMove(other, 'X') == -1, "bestMove must not answer a position from another game");
+    }
+
+    /**
+     * Scores a position for the player to move by plain negamax over the Grid itself: 100 minus
+     * the distance for a win, the distance minus 100 for a loss, and 0 for a draw.
+     */
+    private static int negamax(Grid grid, char symbol) throws ColumnFullException {
+        int best = Integer.MIN_VALUE;
+        for (int col = 0; col < Grid.COLUMNS; col++) {
+            if (!grid.checkColumnFull(col)) {
+                best = Math.max(best, scoreAfterMove(grid, symbol, col));
+            }
+        }
+        return best;
+    }
+
+    private static int scoreAfterMove(Grid grid, char symbol, int col) throws ColumnFullException {
+        char opponent = (symbol == 'X') ? 'O' : 'X';
+        grid.makeMove(symbol, col);
+        int score;
+        if (grid.isWinningMove(col, symbol)) {
+            score = 99;
+        } else if (grid.isGridFull()) {
+            score = 0;
+        } else {
+            int reply = negamax(grid, opponent);
+            score = (reply > 0) ? -reply + 1 : (reply < 0) ? -reply - 1 : 0;
+        }
+        grid.undoMove();
+        return score;
+    }
+
+    private static int score(EndgameTablebase.Result result) {
+        switch (result.getOutcome()) {
+            case WIN:
+                return 100 - result.getDistance();
+            case LOSS:
+                return result.getDistance() - 100;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * A truncated file, a wrong magic number and an out-of-range K must all be rejected.
+     */
+    private static void testLoadRejectsBrokenFiles(byte[] table) throws IOException {
+        checkRejected(Arrays.copyOf(table, table.length - 1), "a truncated file");
+
+        byte[] badMagic = table.clone();
+        badMagic[0] ^= 0x01;
+        checkRejected(badMagic, "a bad magic number");
+
+        byte[] zeroMaxEmptyCells = table.clone();
+        ByteBuffer.wrap(zeroMaxEmptyCells).putInt(8, 0);
+        checkRejected(zeroMaxEmptyCells, "max empty cells 0");
+
+        byte[] largeMaxEmptyCells = table.clone();
+        ByteBuffer.wrap(largeMaxEmptyCells).putInt(8, EndgameTablebase.MAX_EMPTY_CELLS + 1);
+        checkRejected(largeMaxEmptyCells, "max empty cells above the limit");
+    }
+
+    private static void checkRejected(byte[] contents, String description) throws IOException {
+        File file = File.createTempFile("broken", ".tb");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents);
+        check(EndgameTablebase.load(file.getPath()) == null, "load must reject " + description);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}